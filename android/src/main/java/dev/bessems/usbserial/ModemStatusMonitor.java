@@ -0,0 +1,424 @@
+package dev.bessems.usbserial;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDeviceConnection;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.felhr.usbserial.CH34xSerialDevice;
+import com.felhr.usbserial.CP2102SerialDevice;
+import com.felhr.usbserial.FTDISerialDevice;
+import com.felhr.usbserial.UsbSerialDevice;
+import com.felhr.usbserial.UsbSerialInterface;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Tracks the modem status lines (CTS, DSR, CD, RI) and line errors of a single port and
+ * delivers state changes to the "/modemStatus" event channel of the port.
+ *
+ * Where the state comes from depends on the chip:
+ * - CP210x and CH34x: a polling thread reads the modem status register with a vendor request.
+ *   CP210x line errors are polled as well, unless felHR's flow control thread already reads
+ *   them. The chip clears its error flags when they are read, so no error is reported twice.
+ * - FTDI: the chip sends CTS, DSR and the line errors in every bulk-in packet header, felHR
+ *   parses those and calls back. The register is read once for the initial CTS and DSR.
+ *   CD and RI are not reported.
+ * - Anything else: nothing can be read, a single snapshot with all lines unknown is sent.
+ *
+ * Changes that arrive before the main thread delivers the previous one are coalesced into a
+ * single event, and nothing is sent when the net state did not change.
+ */
+class ModemStatusMonitor implements EventChannel.StreamHandler,
+        UsbSerialInterface.UsbCTSCallback, UsbSerialInterface.UsbDSRCallback,
+        UsbSerialInterface.UsbParityCallback, UsbSerialInterface.UsbFrameCallback,
+        UsbSerialInterface.UsbOverrunCallback, UsbSerialInterface.UsbBreakCallback {
+
+    private static final String TAG = ModemStatusMonitor.class.getSimpleName();
+
+    private static final int CTS = 0x01;
+    private static final int DSR = 0x02;
+    private static final int CD = 0x04;
+    private static final int RI = 0x08;
+    private static final int ALL_LINES = CTS | DSR | CD | RI;
+
+    // Line errors are one-shot events, they are cleared once delivered.
+    private static final int PARITY_ERROR = 0x10;
+    private static final int FRAMING_ERROR = 0x20;
+    private static final int OVERRUN_ERROR = 0x40;
+    private static final int BREAK_INTERRUPT = 0x80;
+
+    private static final int POLL_INTERVAL_MS = 20;
+    private static final int POLL_TIMEOUT_MS = 100;
+    // Errors are latched by the chip, so they can be read less often than the lines.
+    private static final int ERROR_POLL_DIVIDER = 5;
+    // A failed poll stops at the first failed transfer, which returns at once when the device
+    // is gone or after POLL_TIMEOUT_MS when it stops answering: between 0.2 and 1.2 seconds.
+    private static final int MAX_POLL_FAILURES = 10;
+
+    private static final int REQTYPE_VENDOR_IN = UsbConstants.USB_DIR_IN | UsbConstants.USB_TYPE_VENDOR;
+    private static final int REQTYPE_VENDOR_INTERFACE_IN = REQTYPE_VENDOR_IN | 0x01;
+    private static final int CP210X_GET_MDMSTS = 0x08;
+    private static final int CP210X_GET_COMM_STATUS = 0x10;
+    private static final int CP210X_COMM_STATUS_LENGTH = 19;
+    private static final int FTDI_SIO_GET_MODEM_STATUS = 0x05;
+    private static final int CH34X_READ_REG = 0x95;
+    private static final int CH34X_REG_MODEM_STATUS = 0x0706;
+
+    private final UsbDeviceConnection m_Connection;
+    private final UsbSerialDevice m_SerialDevice;
+    private final int m_UsbInterface;
+    // The lines can be read with a vendor request.
+    private final boolean m_Readable;
+    // The lines have to be polled, felHR doesn't report changes for all of them.
+    private final boolean m_Polled;
+    private final Handler m_handler;
+
+    // Only touched on the main thread.
+    private EventChannel.EventSink m_EventSink;
+    private boolean m_Open;
+    private Poller m_Poller;
+    private final List<Poller> m_HaltedPollers = new ArrayList<>();
+    private int m_SentLines = -1;
+    private int m_SentObserved = -1;
+
+    // Guarded by this, written from the felHR and poller threads.
+    private int m_Lines;
+    private int m_Observed; // lines whose state has been read since the port was opened
+    private int m_Errors;
+    private long m_ChangedAt;
+    private boolean m_FlushPending;
+    private boolean m_FelhrReadsErrors;
+
+    ModemStatusMonitor(UsbDeviceConnection connection, UsbSerialDevice serialDevice, int usbInterface) {
+        m_Connection = connection;
+        m_SerialDevice = serialDevice;
+        m_UsbInterface = usbInterface;
+        m_Polled = serialDevice instanceof CP2102SerialDevice
+                || serialDevice instanceof CH34xSerialDevice;
+        m_Readable = m_Polled || serialDevice instanceof FTDISerialDevice;
+        m_handler = new Handler(Looper.getMainLooper());
+    }
+
+    void onPortOpened() {
+        reset();
+        if (m_Readable) {
+            // Start the listener off with a fresh snapshot once the lines have been read.
+            m_SentLines = -1;
+            m_SentObserved = -1;
+        }
+        m_Open = true;
+        m_SerialDevice.getCTS(this);
+        m_SerialDevice.getDSR(this);
+        m_SerialDevice.getParity(this);
+        m_SerialDevice.getFrame(this);
+        m_SerialDevice.getOverrun(this);
+        m_SerialDevice.getBreak(this);
+        updatePoller();
+    }
+
+    // Must be called before the connection is closed, so no poller is left using it.
+    void onPortClosed() {
+        m_Open = false;
+        updatePoller();
+        for (Poller poller : m_HaltedPollers) {
+            try {
+                poller.join(POLL_TIMEOUT_MS + POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        m_HaltedPollers.clear();
+        reset();
+    }
+
+    void onFlowControlChanged(int flowControl) {
+        // felHR runs its own CP210x status thread for these, which reads and clears the errors.
+        synchronized (this) {
+            m_FelhrReadsErrors = m_SerialDevice instanceof CP2102SerialDevice
+                    && (flowControl == UsbSerialInterface.FLOW_CONTROL_RTS_CTS
+                    || flowControl == UsbSerialInterface.FLOW_CONTROL_DSR_DTR);
+        }
+    }
+
+    private synchronized void reset() {
+        m_Lines = 0;
+        m_Observed = 0;
+        m_Errors = 0;
+    }
+
+    @Override
+    public void onListen(Object o, EventChannel.EventSink eventSink) {
+        m_EventSink = eventSink;
+        m_SentLines = -1;
+        m_SentObserved = -1;
+        if (m_Readable) {
+            // Nothing was read while nobody listened, start from the first fresh read.
+            reset();
+        } else {
+            // Let the listener know up front that the lines of this chip can't be read.
+            synchronized (this) {
+                scheduleFlush();
+            }
+        }
+        updatePoller();
+    }
+
+    @Override
+    public void onCancel(Object o) {
+        m_EventSink = null;
+        updatePoller();
+    }
+
+    @Override
+    public void onCTSChanged(boolean state) {
+        update(CTS, state ? CTS : 0, 0);
+    }
+
+    @Override
+    public void onDSRChanged(boolean state) {
+        update(DSR, state ? DSR : 0, 0);
+    }
+
+    @Override
+    public void onParityError() {
+        update(0, 0, PARITY_ERROR);
+    }
+
+    @Override
+    public void onFramingError() {
+        update(0, 0, FRAMING_ERROR);
+    }
+
+    @Override
+    public void onOverrunError() {
+        update(0, 0, OVERRUN_ERROR);
+    }
+
+    @Override
+    public void onBreakInterrupt() {
+        update(0, 0, BREAK_INTERRUPT);
+    }
+
+    private synchronized void update(int mask, int lines, int errors) {
+        int newLines = (m_Lines & ~mask) | (lines & mask);
+        int newObserved = m_Observed | mask;
+        if (newLines == m_Lines && newObserved == m_Observed && errors == 0) {
+            return;
+        }
+        m_Lines = newLines;
+        m_Observed = newObserved;
+        m_Errors |= errors;
+        scheduleFlush();
+    }
+
+    // Must be called with the lock held.
+    private void scheduleFlush() {
+        if (!m_FlushPending) {
+            m_FlushPending = true;
+            m_ChangedAt = System.currentTimeMillis();
+            m_handler.post(m_Flush);
+        }
+    }
+
+    private final Runnable m_Flush = new Runnable() {
+        @Override
+        public void run() {
+            int lines;
+            int observed;
+            int errors;
+            long changedAt;
+            synchronized (ModemStatusMonitor.this) {
+                lines = m_Lines;
+                observed = m_Observed;
+                errors = m_Errors;
+                changedAt = m_ChangedAt;
+                m_Errors = 0;
+                m_FlushPending = false;
+            }
+            if (m_EventSink == null || (m_Readable && observed == 0 && errors == 0)) {
+                return;
+            }
+            if (lines == m_SentLines && observed == m_SentObserved && errors == 0) {
+                return;
+            }
+            m_SentLines = lines;
+            m_SentObserved = observed;
+
+            HashMap<String, Object> msg = new HashMap<>();
+            msg.put("cts", line(lines, observed, CTS));
+            msg.put("dsr", line(lines, observed, DSR));
+            msg.put("cd", line(lines, observed, CD));
+            msg.put("ri", line(lines, observed, RI));
+            msg.put("parityError", (errors & PARITY_ERROR) != 0);
+            msg.put("framingError", (errors & FRAMING_ERROR) != 0);
+            msg.put("overrunError", (errors & OVERRUN_ERROR) != 0);
+            msg.put("breakInterrupt", (errors & BREAK_INTERRUPT) != 0);
+            msg.put("timestamp", changedAt);
+            m_EventSink.success(msg);
+        }
+    };
+
+    // Lines that have not been read are sent as null so they can be told apart from deasserted ones.
+    private static Boolean line(int lines, int observed, int bit) {
+        if ((observed & bit) == 0) {
+            return null;
+        }
+        return (lines & bit) != 0;
+    }
+
+    // The poller only runs while the port is open and somebody is listening.
+    private void updatePoller() {
+        boolean wanted = m_Open && m_EventSink != null && m_Readable;
+        if (wanted && m_Poller == null) {
+            m_Poller = new Poller();
+            m_Poller.start();
+        } else if (!wanted && m_Poller != null) {
+            // Don't block here, onPortClosed() waits for halted pollers before the connection closes.
+            m_Poller.halt();
+            m_HaltedPollers.add(m_Poller);
+            m_Poller = null;
+        }
+        for (int i = m_HaltedPollers.size() - 1; i >= 0; i--) {
+            if (!m_HaltedPollers.get(i).isAlive()) {
+                m_HaltedPollers.remove(i);
+            }
+        }
+    }
+
+    // Called on the main thread when a poller ends by itself.
+    private void onPollerExit(Poller poller, boolean failed) {
+        if (m_Poller != poller) {
+            return;
+        }
+        m_Poller = null;
+        if (failed) {
+            reset();
+            if (m_EventSink != null) {
+                m_EventSink.error(TAG, "Modem status lines could not be read, device detached?", null);
+            }
+        }
+    }
+
+    private class Poller extends Thread {
+
+        // Guarded by ModemStatusMonitor.this, so a halted poller can't report after a new one started.
+        private boolean m_Halted;
+
+        Poller() {
+            super(TAG);
+            setDaemon(true);
+        }
+
+        void halt() {
+            synchronized (ModemStatusMonitor.this) {
+                m_Halted = true;
+            }
+            interrupt();
+        }
+
+        private void report(int mask, int lines, int errors) {
+            synchronized (ModemStatusMonitor.this) {
+                if (!m_Halted) {
+                    // Lines felHR already reported are more recent than a one-off read.
+                    if (!m_Polled) {
+                        mask &= ~m_Observed;
+                    }
+                    update(mask, lines, errors);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[CP210X_COMM_STATUS_LENGTH];
+            int failures = 0;
+            int cycle = 0;
+            boolean failed = false;
+            while (!isInterrupted()) {
+                if (poll(buffer, cycle++ % ERROR_POLL_DIVIDER == 0)) {
+                    failures = 0;
+                    if (!m_Polled) {
+                        break;
+                    }
+                } else if (++failures >= MAX_POLL_FAILURES) {
+                    Log.w(TAG, "Modem status poller stopped after " + failures + " failed polls, device detached?");
+                    failed = true;
+                    break;
+                }
+
+                try {
+                    Thread.sleep(POLL_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            final boolean exitFailed = failed;
+            m_handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onPollerExit(Poller.this, exitFailed);
+                }
+            });
+        }
+
+        // Returns false if a transfer failed.
+        private boolean poll(byte[] buffer, boolean readErrors) {
+            if (m_SerialDevice instanceof CP2102SerialDevice) {
+                if (m_Connection.controlTransfer(REQTYPE_VENDOR_INTERFACE_IN, CP210X_GET_MDMSTS, 0,
+                        m_UsbInterface, buffer, 1, POLL_TIMEOUT_MS) != 1) {
+                    return false;
+                }
+                int lines = modemBits(buffer[0] >> 4);
+                int errors = 0;
+                boolean felhrReadsErrors;
+                synchronized (ModemStatusMonitor.this) {
+                    felhrReadsErrors = m_FelhrReadsErrors;
+                }
+                if (readErrors && !felhrReadsErrors && !isInterrupted()) {
+                    // The error flags are cleared by this read, so every error is reported once.
+                    if (m_Connection.controlTransfer(REQTYPE_VENDOR_INTERFACE_IN, CP210X_GET_COMM_STATUS, 0,
+                            m_UsbInterface, buffer, CP210X_COMM_STATUS_LENGTH, POLL_TIMEOUT_MS) != CP210X_COMM_STATUS_LENGTH) {
+                        return false;
+                    }
+                    if ((buffer[0] & 0x01) != 0) errors |= BREAK_INTERRUPT;
+                    if ((buffer[0] & 0x02) != 0) errors |= FRAMING_ERROR;
+                    if ((buffer[0] & 0x0c) != 0) errors |= OVERRUN_ERROR;
+                    if ((buffer[0] & 0x10) != 0) errors |= PARITY_ERROR;
+                }
+                report(ALL_LINES, lines, errors);
+            } else if (m_SerialDevice instanceof FTDISerialDevice) {
+                // FTDI ports are numbered from 1. Only needed once, felHR reports later changes.
+                if (m_Connection.controlTransfer(REQTYPE_VENDOR_IN, FTDI_SIO_GET_MODEM_STATUS, 0,
+                        m_UsbInterface + 1, buffer, 2, POLL_TIMEOUT_MS) != 2) {
+                    return false;
+                }
+                report(CTS | DSR, modemBits(buffer[0] >> 4), 0);
+            } else if (m_SerialDevice instanceof CH34xSerialDevice) {
+                // CH34x reports the modem lines active low.
+                if (m_Connection.controlTransfer(REQTYPE_VENDOR_IN, CH34X_READ_REG, CH34X_REG_MODEM_STATUS,
+                        0, buffer, 2, POLL_TIMEOUT_MS) != 2) {
+                    return false;
+                }
+                report(ALL_LINES, modemBits(~buffer[0]), 0);
+            }
+            return true;
+        }
+    }
+
+    // Converts the CTS, DSR, RI, CD nibble shared by the supported chips into our line bits.
+    private static int modemBits(int nibble) {
+        int lines = 0;
+        if ((nibble & 0x01) != 0) lines |= CTS;
+        if ((nibble & 0x02) != 0) lines |= DSR;
+        if ((nibble & 0x04) != 0) lines |= RI;
+        if ((nibble & 0x08) != 0) lines |= CD;
+        return lines;
+    }
+}
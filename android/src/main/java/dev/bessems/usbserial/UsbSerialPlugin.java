@@ -257,7 +257,9 @@ public class UsbSerialPlugin implements FlutterPlugin, MethodCallHandler, EventC
 
             if (serialDevice != null) {
                 int newInterfaceId = m_InterfaceId++; // Use a new ID for this port
-                UsbSerialPortAdapter adapter = new UsbSerialPortAdapter(m_Messenger, newInterfaceId, connection, serialDevice);
+                // felHR falls back to the first interface when none is specified.
+                int usbInterface = iface >= 0 ? iface : 0;
+                UsbSerialPortAdapter adapter = new UsbSerialPortAdapter(m_Messenger, newInterfaceId, connection, serialDevice, usbInterface);
                 Log.d(TAG, "UsbSerialDevice created. Method channel name: " + adapter.getMethodChannelName() + " for interface ID: " + newInterfaceId);
                 result.success(adapter.getMethodChannelName());
             } else {
@@ -26,8 +26,9 @@ public class UsbSerialPortAdapter implements MethodCallHandler, EventChannel.Str
     private String m_MethodChannelName;
     private EventChannel.EventSink m_EventSink;
     private Handler m_handler;
+    private ModemStatusMonitor m_ModemStatus;
 
-    UsbSerialPortAdapter(BinaryMessenger messenger, int interfaceId, UsbDeviceConnection connection, UsbSerialDevice serialDevice) {
+    UsbSerialPortAdapter(BinaryMessenger messenger, int interfaceId, UsbDeviceConnection connection, UsbSerialDevice serialDevice, int usbInterface) {
         m_Messenger = messenger;
         m_InterfaceId = interfaceId;
         m_Connection = connection;
@@ -38,6 +39,9 @@ public class UsbSerialPortAdapter implements MethodCallHandler, EventChannel.Str
         channel.setMethodCallHandler(this);
         final EventChannel eventChannel = new EventChannel(m_Messenger, m_MethodChannelName + "/stream");
         eventChannel.setStreamHandler(this);
+        m_ModemStatus = new ModemStatusMonitor(connection, serialDevice, usbInterface);
+        final EventChannel modemStatusChannel = new EventChannel(m_Messenger, m_MethodChannelName + "/modemStatus");
+        modemStatusChannel.setStreamHandler(m_ModemStatus);
     }
 
     String getMethodChannelName() {
@@ -53,6 +57,7 @@ public class UsbSerialPortAdapter implements MethodCallHandler, EventChannel.Str
 
     private void setFlowControl( int flowControl ) {
         m_SerialDevice.setFlowControl(flowControl);
+        m_ModemStatus.onFlowControlChanged(flowControl);
     }
 
     private UsbSerialInterface.UsbReadCallback mCallback = new UsbSerialInterface.UsbReadCallback() {
@@ -77,6 +82,7 @@ public class UsbSerialPortAdapter implements MethodCallHandler, EventChannel.Str
     private Boolean open() {
         if ( m_SerialDevice.open() ) {
             m_SerialDevice.read(mCallback);
+            m_ModemStatus.onPortOpened();
             return true;
         } else {
             return false;
@@ -84,6 +90,7 @@ public class UsbSerialPortAdapter implements MethodCallHandler, EventChannel.Str
     }
 
     private Boolean close() {
+        m_ModemStatus.onPortClosed();
         m_SerialDevice.close();
         return true;
     }
@@ -44,6 +44,64 @@ class UsbEvent {
   }
 }
 
+/// Modem status lines and line errors of a [UsbPort], delivered by
+/// [UsbPort.modemStatusStream] whenever they change.
+///
+/// All modem lines are read on CP210x and CH34x chips, CTS and DSR on FTDI
+/// chips. A line that cannot be read is null, so it can be told apart from a
+/// deasserted line. Line errors are reported on FTDI and CP210x chips.
+///
+/// Example:
+/// ```dart
+/// port.modemStatusStream.listen((UsbModemStatus status) {
+///   if (status.cts == true) {
+///     // peer is ready to receive, resume writing...
+///   }
+/// }, onError: (error) {
+///   // lines can no longer be read, stop waiting for CTS...
+/// });
+/// ```
+class UsbModemStatus {
+  /// Clear To Send, or null if unknown.
+  final bool? cts;
+
+  /// Data Set Ready, or null if unknown.
+  final bool? dsr;
+
+  /// Carrier Detect, or null if unknown.
+  final bool? cd;
+
+  /// Ring Indicator, or null if unknown.
+  final bool? ri;
+
+  /// A parity error occurred since the previous event.
+  final bool parityError;
+
+  /// A framing error occurred since the previous event.
+  final bool framingError;
+
+  /// The receive buffer overran since the previous event.
+  final bool overrunError;
+
+  /// A break condition was received since the previous event.
+  final bool breakInterrupt;
+
+  /// Time of the first change reported by this event.
+  final DateTime timestamp;
+
+  UsbModemStatus(this.cts, this.dsr, this.cd, this.ri, this.parityError, this.framingError, this.overrunError, this.breakInterrupt, this.timestamp);
+
+  static UsbModemStatus fromJSON(dynamic json) {
+    return UsbModemStatus(json["cts"], json["dsr"], json["cd"], json["ri"], json["parityError"], json["framingError"], json["overrunError"],
+        json["breakInterrupt"], DateTime.fromMillisecondsSinceEpoch(json["timestamp"]));
+  }
+
+  @override
+  String toString() {
+    return "UsbModemStatus: CTS : $cts, DSR : $dsr, CD : $cd, RI : $ri, Parity error : $parityError, Framing error : $framingError, Overrun error : $overrunError, Break : $breakInterrupt, at $timestamp";
+  }
+}
+
 /// UsbPort handles the communication with the USB Serial port.
 class UsbPort extends AsyncDataSinkSource {
   /// Constant to configure port with 5 databits.
@@ -96,7 +154,9 @@ class UsbPort extends AsyncDataSinkSource {
 
   final MethodChannel _channel;
   final EventChannel _eventChannel;
+  final EventChannel _modemStatusChannel;
   Stream<Uint8List>? _inputStream;
+  Stream<UsbModemStatus>? _modemStatusStream;
 
   int _baudRate = 115200;
   int _dataBits = UsbPort.DATABITS_8;
@@ -113,14 +173,14 @@ class UsbPort extends AsyncDataSinkSource {
   int get stopBits => _stopBits;
   int get parity => _parity;
 
-  UsbPort._internal(this._channel, this._eventChannel);
+  UsbPort._internal(this._channel, this._eventChannel, this._modemStatusChannel);
 
   /// Factory to create UsbPort object.
   ///
   /// You don't need to use this directly as you get UsbPort from
   /// [UsbDevice.create].
   factory UsbPort(String methodChannelName) {
-    return UsbPort._internal(MethodChannel(methodChannelName), EventChannel(methodChannelName + "/stream"));
+    return UsbPort._internal(MethodChannel(methodChannelName), EventChannel(methodChannelName + "/stream"), EventChannel(methodChannelName + "/modemStatus"));
   }
 
   /// returns the asynchronous input stream.
@@ -143,6 +203,29 @@ class UsbPort extends AsyncDataSinkSource {
     return _inputStream;
   }
 
+  /// returns the modem status stream.
+  ///
+  /// Once the port is open and the lines have been read, the current status
+  /// is delivered, after that only changes are delivered. Changes that happen
+  /// in quick succession are combined into a single event.
+  ///
+  /// On chips where the modem lines cannot be read (anything other than
+  /// CP210x, FTDI and CH34x, e.g. CDC and PL2303) a single status with all
+  /// lines null is delivered when listening starts, and nothing follows.
+  ///
+  /// If the lines can no longer be read, for example because the device was
+  /// unplugged, a [PlatformException] is added to the stream.
+  ///
+  /// ```dart
+  /// port.modemStatusStream.listen((UsbModemStatus status) { print(status); }, onError: (error) { print(error); });
+  /// ```
+  Stream<UsbModemStatus> get modemStatusStream {
+    if (_modemStatusStream == null) {
+      _modemStatusStream = _modemStatusChannel.receiveBroadcastStream().map<UsbModemStatus>(UsbModemStatus.fromJSON);
+    }
+    return _modemStatusStream!;
+  }
+
   /// Opens the uart communication channel.
   ///
   /// returns true if successful or false if failed.
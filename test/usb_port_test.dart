@@ -0,0 +1,88 @@
+import 'package:flutter/services.dart';
+import 'package:flutter_test/flutter_test.dart';
+import 'package:usb_serial/usb_serial.dart';
+
+const String _channelName = "usb_serial/UsbSerialPortAdapter/100";
+const String _modemStatusChannelName = _channelName + "/modemStatus";
+const StandardMethodCodec _codec = StandardMethodCodec();
+
+/// Answers the listen call on the modem status channel and then sends [events].
+void _mockModemStatusChannel(List<ByteData> events) {
+  var messenger = TestDefaultBinaryMessengerBinding.instance.defaultBinaryMessenger;
+  messenger.setMockMessageHandler(_modemStatusChannelName, (ByteData? message) async {
+    if (_codec.decodeMethodCall(message).method == "listen") {
+      Future<void>.delayed(Duration.zero, () async {
+        for (var event in events) {
+          await messenger.handlePlatformMessage(_modemStatusChannelName, event, (ByteData? reply) {});
+        }
+      });
+    }
+    return _codec.encodeSuccessEnvelope(null);
+  });
+}
+
+void testModemStatus() {
+  tearDown(() {
+    TestDefaultBinaryMessengerBinding.instance.defaultBinaryMessenger.setMockMessageHandler(_modemStatusChannelName, null);
+  });
+
+  test("Testing modem status mapping", () async {
+    _mockModemStatusChannel([
+      _codec.encodeSuccessEnvelope({
+        "cts": true,
+        "dsr": false,
+        "cd": true,
+        "ri": false,
+        "parityError": false,
+        "framingError": true,
+        "overrunError": false,
+        "breakInterrupt": true,
+        "timestamp": 1700000000123,
+      }),
+    ]);
+
+    UsbModemStatus status = await UsbPort(_channelName).modemStatusStream.first;
+    expect(status.cts, isTrue);
+    expect(status.dsr, isFalse);
+    expect(status.cd, isTrue);
+    expect(status.ri, isFalse);
+    expect(status.parityError, isFalse);
+    expect(status.framingError, isTrue);
+    expect(status.overrunError, isFalse);
+    expect(status.breakInterrupt, isTrue);
+    expect(status.timestamp, equals(DateTime.fromMillisecondsSinceEpoch(1700000000123)));
+  });
+
+  test("Testing unknown modem status lines", () async {
+    _mockModemStatusChannel([
+      _codec.encodeSuccessEnvelope({
+        "cts": null,
+        "dsr": null,
+        "cd": null,
+        "ri": null,
+        "parityError": false,
+        "framingError": false,
+        "overrunError": false,
+        "breakInterrupt": false,
+        "timestamp": 0,
+      }),
+    ]);
+
+    await expectLater(
+        UsbPort(_channelName).modemStatusStream,
+        emits(predicate<UsbModemStatus>((status) => status.cts == null && status.dsr == null && status.cd == null && status.ri == null)));
+  });
+
+  test("Testing modem status read failure", () async {
+    _mockModemStatusChannel([
+      _codec.encodeErrorEnvelope(code: "ModemStatusMonitor", message: "Modem status lines could not be read, device detached?"),
+    ]);
+
+    await expectLater(UsbPort(_channelName).modemStatusStream, emitsError(isA<PlatformException>()));
+  });
+}
+
+void main() {
+  TestWidgetsFlutterBinding.ensureInitialized();
+  group("UsbPort", testModemStatus);
+}